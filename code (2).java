@@ -13,9 +13,10 @@ public class Rental {
     private Customer customer;
     private LocalDate rentalDate;
     private LocalDate expectedReturnDate;
-    private LocalDate actualReturnDate;
-    private double totalCost;
-    private boolean isReturned;
+    // Volatile so other threads see a return once isReturned is set, which happens last
+    private volatile LocalDate actualReturnDate;
+    private volatile double totalCost;
+    private volatile boolean isReturned;
 
     public Rental(Car car, Customer customer, LocalDate rentalDate, LocalDate expectedReturnDate) {
         this.id = idGenerator.incrementAndGet();
@@ -65,8 +66,8 @@ public class Rental {
     // Setters
     public void setActualReturnDate(LocalDate actualReturnDate) {
         this.actualReturnDate = actualReturnDate;
-        this.isReturned = true;
         calculateFinalCost();
+        this.isReturned = true;
     }
     
     private void calculateInitialCost() {
@@ -3,19 +3,57 @@ package com.carrental;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.stream.Collectors;
 
 public class RentalService {
-    private List<Car> cars;
-    private List<Customer> customers;
-    private List<Rental> rentals;
+    // Cheapest car first; ID breaks ties so distinct cars never compare equal
+    private static final Comparator<IndexEntry> ASSIGNMENT_ORDER =
+            Comparator.comparingDouble((IndexEntry entry) -> entry.dailyRate).thenComparingInt(entry -> entry.car.getId());
+
+    // An available car together with the daily rate it had when it was indexed.
+    // Ordering on the snapshot keeps the index intact if Car.setDailyRate is called
+    // while the car is available; the new rate takes effect at its next return.
+    private static final class IndexEntry {
+        final Car car;
+        final double dailyRate;
+
+        IndexEntry(Car car) {
+            this.car = car;
+            this.dailyRate = car.getDailyRate();
+        }
+    }
+
+    // Lookups go through the ID maps; the queues only keep insertion order for listings
+    private Queue<Car> cars;
+    private Queue<Customer> customers;
+    private Queue<Rental> rentals;
+    private Map<Integer, Car> carsById;
+    private Map<Integer, Customer> customersById;
+    private Map<Integer, Rental> rentalsById;
+    private Map<Integer, Rental> activeRentals;
+    // Available cars per category; removing a car from its set is what claims it for a rental
+    private Map<CarCategory, ConcurrentSkipListSet<IndexEntry>> availableByCategory;
+    private Map<Car, IndexEntry> indexEntries;
 
     public RentalService() {
-        this.cars = new ArrayList<>();
-        this.customers = new ArrayList<>();
-        this.rentals = new ArrayList<>();
+        this.cars = new ConcurrentLinkedQueue<>();
+        this.customers = new ConcurrentLinkedQueue<>();
+        this.rentals = new ConcurrentLinkedQueue<>();
+        this.carsById = new ConcurrentHashMap<>();
+        this.customersById = new ConcurrentHashMap<>();
+        this.rentalsById = new ConcurrentHashMap<>();
+        this.activeRentals = new ConcurrentHashMap<>();
+        this.availableByCategory = new ConcurrentHashMap<>();
+        this.indexEntries = new ConcurrentHashMap<>();
         // Add some sample data
         addSampleData();
     }
@@ -35,7 +73,11 @@ public class RentalService {
 
     // Car Management
     public void addCar(Car car) {
+        carsById.put(car.getId(), car);
         cars.add(car);
+        if (car.isAvailable()) {
+            indexCar(car);
+        }
     }
 
     public List<Car> getAllCars() {
@@ -43,19 +85,21 @@ public class RentalService {
     }
 
     public List<Car> getAvailableCars() {
-        return cars.stream()
-                   .filter(Car::isAvailable)
-                   .collect(Collectors.toList());
+        // The category index is the source of truth for what can be rented
+        return availableByCategory.values().stream()
+                                  .flatMap(Collection::stream)
+                                  .map(entry -> entry.car)
+                                  .sorted(Comparator.comparingInt(Car::getId))
+                                  .collect(Collectors.toList());
     }
 
     public Optional<Car> findCarById(int carId) {
-        return cars.stream()
-                   .filter(car -> car.getId() == carId)
-                   .findFirst();
+        return Optional.ofNullable(carsById.get(carId));
     }
 
     // Customer Management
     public void addCustomer(Customer customer) {
+        customersById.put(customer.getId(), customer);
         customers.add(customer);
     }
 
@@ -64,28 +108,33 @@ public class RentalService {
     }
 
     public Optional<Customer> findCustomerById(int customerId) {
-        return customers.stream()
-                       .filter(customer -> customer.getId() == customerId)
-                       .findFirst();
+        return Optional.ofNullable(customersById.get(customerId));
     }
 
     // Rental Management
     public boolean rentCar(int carId, int customerId, LocalDate rentalDate, LocalDate expectedReturnDate) {
+        return rentSpecificCar(carId, customerId, rentalDate, expectedReturnDate).isPresent();
+    }
+
+    /**
+     * Same as {@link #rentCar} but hands back the created rental.
+     *
+     * @return the new rental, or empty if the car or customer is unknown or the
+     *         car is not available
+     */
+    public Optional<Rental> rentSpecificCar(int carId, int customerId, LocalDate rentalDate, LocalDate expectedReturnDate) {
         Optional<Car> carOpt = findCarById(carId);
         Optional<Customer> customerOpt = findCustomerById(customerId);
 
         if (carOpt.isPresent() && customerOpt.isPresent()) {
             Car car = carOpt.get();
-            if (car.isAvailable()) {
-                Customer customer = customerOpt.get();
-                Rental rental = new Rental(car, customer, rentalDate, expectedReturnDate);
-                rentals.add(rental);
-                car.setAvailable(false);
+            if (claimCar(car)) {
+                Rental rental = createRental(car, customerOpt.get(), rentalDate, expectedReturnDate);
                 System.out.println("Car rented successfully! Rental ID: " + rental.getId());
-                return true;
+                return Optional.of(rental);
             } else {
                 System.out.println("Error: Car (ID: " + carId + ") is not available for rent.");
-                return false;
+                return Optional.empty();
             }
         } else {
             if (!carOpt.isPresent()) {
@@ -94,8 +143,65 @@ public class RentalService {
             if (!customerOpt.isPresent()) {
                 System.out.println("Error: Customer with ID " + customerId + " not found.");
             }
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Rents the best available car of the given category (lowest daily rate)
+     * without the operator having to pick a car ID.
+     *
+     * @return the new rental, or empty if the customer is unknown or no car of
+     *         that category is available
+     */
+    public Optional<Rental> rentAnyCar(CarCategory category, int customerId, LocalDate rentalDate, LocalDate expectedReturnDate) {
+        Optional<Customer> customerOpt = findCustomerById(customerId);
+        if (!customerOpt.isPresent()) {
+            System.out.println("Error: Customer with ID " + customerId + " not found.");
+            return Optional.empty();
+        }
+
+        ConcurrentSkipListSet<IndexEntry> available = availableByCategory.get(category);
+        IndexEntry entry = available == null ? null : available.pollFirst();
+        if (entry == null) {
+            System.out.println("Error: No " + category + " is available for rent.");
+            return Optional.empty();
+        }
+        Car car = entry.car;
+        indexEntries.remove(car, entry);
+
+        Rental rental = createRental(car, customerOpt.get(), rentalDate, expectedReturnDate);
+        System.out.println("Car (ID: " + car.getId() + ") rented successfully! Rental ID: " + rental.getId());
+        return Optional.of(rental);
+    }
+
+    // Callers must already have claimed the car by removing it from its category index.
+    private Rental createRental(Car car, Customer customer, LocalDate rentalDate, LocalDate expectedReturnDate) {
+        Rental rental = new Rental(car, customer, rentalDate, expectedReturnDate);
+        car.setAvailable(false);
+        rentalsById.put(rental.getId(), rental);
+        activeRentals.put(rental.getId(), rental);
+        rentals.add(rental);
+        return rental;
+    }
+
+    private void indexCar(Car car) {
+        IndexEntry entry = new IndexEntry(car);
+        indexEntries.put(car, entry);
+        availableByCategory.computeIfAbsent(CarCategory.of(car), c -> new ConcurrentSkipListSet<>(ASSIGNMENT_ORDER))
+                           .add(entry);
+    }
+
+    // Removing the entry from its category set is the single claim point, so a car
+    // asked for by ID and by category at the same time is only rented once.
+    private boolean claimCar(Car car) {
+        IndexEntry entry = indexEntries.get(car);
+        ConcurrentSkipListSet<IndexEntry> available = availableByCategory.get(CarCategory.of(car));
+        if (entry == null || available == null || !available.remove(entry)) {
             return false;
         }
+        indexEntries.remove(car, entry);
+        return true;
     }
 
     public boolean returnCar(int rentalId, LocalDate actualReturnDate) {
@@ -103,9 +209,18 @@ public class RentalService {
 
         if (rentalOpt.isPresent()) {
             Rental rental = rentalOpt.get();
-            if (!rental.isReturned()) {
-                rental.getCar().setAvailable(true);
-                rental.setActualReturnDate(actualReturnDate);
+            boolean returned;
+            synchronized (rental) {
+                returned = !rental.isReturned();
+                if (returned) {
+                    rental.setActualReturnDate(actualReturnDate);
+                }
+            }
+            if (returned) {
+                activeRentals.remove(rentalId);
+                Car car = rental.getCar();
+                car.setAvailable(true);
+                indexCar(car);
                 System.out.println("Car returned successfully. Final cost: $" + String.format("%.2f", rental.getTotalCost()));
                 return true;
             } else {
@@ -119,15 +234,11 @@ public class RentalService {
     }
 
     public Optional<Rental> findRentalById(int rentalId) {
-        return rentals.stream()
-                      .filter(rental -> rental.getId() == rentalId && !rental.isReturned())
-                      .findFirst();
+        return Optional.ofNullable(activeRentals.get(rentalId));
     }
     
     public Optional<Rental> findAnyRentalById(int rentalId) { // Finds active or returned
-        return rentals.stream()
-                      .filter(rental -> rental.getId() == rentalId)
-                      .findFirst();
+        return Optional.ofNullable(rentalsById.get(rentalId));
     }
 
 
@@ -136,13 +247,13 @@ public class RentalService {
     }
 
     public List<Rental> getActiveRentals() {
-        return rentals.stream()
-                      .filter(rental -> !rental.isReturned())
-                      .collect(Collectors.toList());
+        return activeRentals.values().stream()
+                            .sorted(Comparator.comparingInt(Rental::getId))
+                            .collect(Collectors.toList());
     }
 
     public List<Rental> getRentalHistory() {
-         return rentals.stream()
+        return rentals.stream()
                       .filter(Rental::isReturned)
                       .collect(Collectors.toList());
     }
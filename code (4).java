@@ -54,6 +54,9 @@ public class CarRentalSystem {
                 case 9:
                     listRentalHistory();
                     break;
+                case 10:
+                    rentAnyCar();
+                    break;
                 case 0:
                     System.out.println("Exiting system. Goodbye!");
                     scanner.close();
@@ -77,6 +80,7 @@ public class CarRentalSystem {
         System.out.println("7. List All Customers");
         System.out.println("8. List Active Rentals");
         System.out.println("9. View Rental History");
+        System.out.println("10. Rent Any Car by Category");
         System.out.println("0. Exit");
         System.out.print("Enter your choice: ");
     }
@@ -151,32 +155,12 @@ public class CarRentalSystem {
             int customerId = scanner.nextInt();
             scanner.nextLine(); // Consume newline
 
-            System.out.print("Enter rental start date (YYYY-MM-DD) (default: today): ");
-            String startDateStr = scanner.nextLine();
-            LocalDate rentalDate = LocalDate.now();
-            if (!startDateStr.isEmpty()) {
-                try {
-                    rentalDate = LocalDate.parse(startDateStr, dateFormatter);
-                } catch (DateTimeParseException e) {
-                    System.out.println("Invalid date format. Using today's date.");
-                }
-            }
-            
-            System.out.print("Enter expected return date (YYYY-MM-DD): ");
-            String returnDateStr = scanner.nextLine();
-            LocalDate expectedReturnDate;
-            try {
-                expectedReturnDate = LocalDate.parse(returnDateStr, dateFormatter);
-                if (expectedReturnDate.isBefore(rentalDate) || expectedReturnDate.isEqual(rentalDate)) {
-                    System.out.println("Return date must be after the rental date.");
-                    return;
-                }
-            } catch (DateTimeParseException e) {
-                System.out.println("Invalid date format. Please try again.");
+            LocalDate[] dates = readRentalDates();
+            if (dates == null) {
                 return;
             }
 
-            rentalService.rentCar(carId, customerId, rentalDate, expectedReturnDate);
+            rentalService.rentCar(carId, customerId, dates[0], dates[1]);
 
         } catch (InputMismatchException e) {
             System.out.println("Invalid ID format. Please enter a number.");
@@ -186,6 +170,73 @@ public class CarRentalSystem {
         }
     }
 
+    private static void rentAnyCar() {
+        System.out.println("\n--- Rent Any Car by Category ---");
+        try {
+            System.out.print("Enter car make: ");
+            String make = scanner.nextLine();
+            System.out.print("Enter car model: ");
+            String model = scanner.nextLine();
+            System.out.print("Enter car year: ");
+            int year = scanner.nextInt();
+            scanner.nextLine(); // Consume newline
+
+            if (make.isEmpty() || model.isEmpty()) {
+                System.out.println("Make and model cannot be empty.");
+                return;
+            }
+
+            listAllCustomers();
+            System.out.print("Enter Customer ID: ");
+            int customerId = scanner.nextInt();
+            scanner.nextLine(); // Consume newline
+
+            LocalDate[] dates = readRentalDates();
+            if (dates == null) {
+                return;
+            }
+
+            rentalService.rentAnyCar(new CarCategory(make, model, year), customerId, dates[0], dates[1])
+                         .ifPresent(rental -> System.out.println(rental));
+
+        } catch (InputMismatchException e) {
+            System.out.println("Invalid input format. Please enter a number.");
+            scanner.nextLine(); // Clear buffer
+        } catch (Exception e) {
+            System.out.println("An error occurred: " + e.getMessage());
+        }
+    }
+
+    // Prompts for the rental start and expected return dates.
+    // Returns {rentalDate, expectedReturnDate}, or null if the input was invalid.
+    private static LocalDate[] readRentalDates() {
+        System.out.print("Enter rental start date (YYYY-MM-DD) (default: today): ");
+        String startDateStr = scanner.nextLine();
+        LocalDate rentalDate = LocalDate.now();
+        if (!startDateStr.isEmpty()) {
+            try {
+                rentalDate = LocalDate.parse(startDateStr, dateFormatter);
+            } catch (DateTimeParseException e) {
+                System.out.println("Invalid date format. Using today's date.");
+            }
+        }
+
+        System.out.print("Enter expected return date (YYYY-MM-DD): ");
+        String returnDateStr = scanner.nextLine();
+        LocalDate expectedReturnDate;
+        try {
+            expectedReturnDate = LocalDate.parse(returnDateStr, dateFormatter);
+        } catch (DateTimeParseException e) {
+            System.out.println("Invalid date format. Please try again.");
+            return null;
+        }
+        if (expectedReturnDate.isBefore(rentalDate) || expectedReturnDate.isEqual(rentalDate)) {
+            System.out.println("Return date must be after the rental date.");
+            return null;
+        }
+        return new LocalDate[] {rentalDate, expectedReturnDate};
+    }
+
     private static void returnCar() {
         System.out.println("\n--- Return a Car ---");
         listActiveRentals();
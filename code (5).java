@@ -0,0 +1,59 @@
+// CarCategory.java
+package com.carrental;
+
+import java.util.Locale;
+import java.util.Objects;
+
+public class CarCategory {
+    private final String make;
+    private final String model;
+    private final int year;
+    // Locale-independent lower case, so equals and hashCode agree under any default locale
+    private final String makeKey;
+    private final String modelKey;
+
+    public CarCategory(String make, String model, int year) {
+        this.make = make;
+        this.model = model;
+        this.year = year;
+        this.makeKey = make.toLowerCase(Locale.ROOT);
+        this.modelKey = model.toLowerCase(Locale.ROOT);
+    }
+
+    public static CarCategory of(Car car) {
+        return new CarCategory(car.getMake(), car.getModel(), car.getYear());
+    }
+
+    // Getters
+    public String getMake() {
+        return make;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    @Override
+    public String toString() {
+        return make + " " + model + " (" + year + ")";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CarCategory that = (CarCategory) o;
+        return year == that.year &&
+               makeKey.equals(that.makeKey) &&
+               modelKey.equals(that.modelKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(makeKey, modelKey, year);
+    }
+}
@@ -0,0 +1,966 @@
+// WorkloadSimulator.java
+package com.carrental;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Generates seeded synthetic traffic for {@link RentalService}, records it to a
+ * trace file and replays traces against a fresh service from several threads.
+ *
+ * Usage:
+ *   generate &lt;trace&gt; [seed=..] [ops=..] [fleet=..] [customers=..] [rate=..] [secondsPerDay=..] [mix=rent:return:late:list:customer:any]
+ *   replay &lt;trace&gt; [threads=..] [speed=1x|max]
+ *   run [generate options] [threads=..] [speed=1x|max]
+ */
+public class WorkloadSimulator {
+    static final byte RENT = 0;
+    static final byte RETURN = 1;
+    static final byte LATE_RETURN = 2;
+    static final byte LIST = 3;
+    static final byte NEW_CUSTOMER = 4;
+    static final byte RENT_ANY = 5;
+    private static final String[] OP_NAMES = {"rent", "return", "late-return", "list", "new-customer", "rent-any"};
+
+    private static final int TRACE_MAGIC = 0x43525754; // "CRWT"
+    private static final int TRACE_VERSION = 4;
+
+    private static final String[][] CATALOG = {
+            {"Toyota", "Camry"}, {"Honda", "Civic"}, {"Ford", "Mustang"},
+            {"BMW", "X5"}, {"Tesla", "Model 3"}, {"Kia", "Sorento"}
+    };
+    // Older than any of RentalService's sample cars, so rent-any never hands one of those out
+    private static final int FIRST_MODEL_YEAR = 2016;
+    private static final int MODEL_YEARS = 5;
+
+    // Workload Configuration
+    public static class Config {
+        long seed = 42;
+        int operations = 100_000;
+        int fleetSize = 500;
+        int customerCount = 2_000;
+        double arrivalsPerSecond = 5_000;   // Mean of the Poisson arrival process
+        double secondsPerDay = 0.1;         // How fast the simulated clock advances
+        LocalDate startDate = LocalDate.of(2024, 1, 1);
+        int[] mix = {25, 30, 5, 20, 5, 15}; // Weights indexed by op type
+
+        static Config parse(Map<String, String> options) {
+            Config config = new Config();
+            if (options.containsKey("seed")) config.seed = Long.parseLong(options.get("seed"));
+            if (options.containsKey("ops")) config.operations = Integer.parseInt(options.get("ops"));
+            if (options.containsKey("fleet")) config.fleetSize = Integer.parseInt(options.get("fleet"));
+            if (options.containsKey("customers")) config.customerCount = Integer.parseInt(options.get("customers"));
+            if (options.containsKey("rate")) config.arrivalsPerSecond = Double.parseDouble(options.get("rate"));
+            if (options.containsKey("secondsPerDay")) config.secondsPerDay = Double.parseDouble(options.get("secondsPerDay"));
+            if (options.containsKey("start")) config.startDate = LocalDate.parse(options.get("start"));
+            if (options.containsKey("mix")) {
+                String[] parts = options.get("mix").split(":");
+                if (parts.length != OP_NAMES.length) {
+                    throw new IllegalArgumentException("mix needs " + OP_NAMES.length + " weights (rent:return:late:list:customer:any)");
+                }
+                for (int i = 0; i < parts.length; i++) {
+                    config.mix[i] = Integer.parseInt(parts[i]);
+                }
+            }
+            if (config.fleetSize <= 0 || config.customerCount <= 0 || config.operations <= 0
+                    || !(config.arrivalsPerSecond > 0) || !(config.secondsPerDay > 0)) {
+                throw new IllegalArgumentException("ops, fleet, customers, rate and secondsPerDay must be positive");
+            }
+            long totalWeight = 0;
+            for (int weight : config.mix) {
+                if (weight < 0) {
+                    throw new IllegalArgumentException("mix weights must not be negative");
+                }
+                totalWeight += weight;
+            }
+            if (totalWeight == 0 || totalWeight > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("mix weights must add up to a positive int");
+            }
+            return config;
+        }
+    }
+
+    // A single recorded request. Cars and customers are referenced by their index
+    // in the simulated fleet, not by ID, so a trace replays against any fresh service.
+    static class Op {
+        final byte type;
+        final long arrivalMicros;
+        final int day;          // Offset from the start date; the rental or return date
+        final int car;          // Fleet slot, or category index for pooled ops (handle >= 0)
+        final int customer;     // Renting customer, or index of the new customer
+        final int rentalDays;   // Expected rental duration, for RENT and RENT_ANY only
+        final int handle;       // Pooled rental this RENT_ANY creates or this return ends; -1 otherwise
+        final int after;        // RENT_ANY only: pooled returns in its category that must complete first
+
+        Op(byte type, long arrivalMicros, int day, int car, int customer, int rentalDays) {
+            this(type, arrivalMicros, day, car, customer, rentalDays, -1, 0);
+        }
+
+        Op(byte type, long arrivalMicros, int day, int car, int customer, int rentalDays, int handle, int after) {
+            this.type = type;
+            this.arrivalMicros = arrivalMicros;
+            this.day = day;
+            this.car = car;
+            this.customer = customer;
+            this.rentalDays = rentalDays;
+            this.handle = handle;
+            this.after = after;
+        }
+
+        boolean isReturn() {
+            return type == RETURN || type == LATE_RETURN;
+        }
+    }
+
+    // One slot of the simulated fleet, recorded in the trace so a replay rebuilds exactly
+    // the cars the trace was generated for. Pooled cars are only ever rented by category,
+    // so rent-by-ID and rent-any never compete for the same car.
+    static class FleetCar {
+        final String make;
+        final String model;
+        final int year;
+        final double dailyRate;
+        final boolean pooled;
+
+        FleetCar(String make, String model, int year, double dailyRate, boolean pooled) {
+            this.make = make;
+            this.model = model;
+            this.year = year;
+            this.dailyRate = dailyRate;
+            this.pooled = pooled;
+        }
+    }
+
+    static class Trace {
+        final Config config;
+        final List<FleetCar> fleet;
+        final List<Op> ops;
+
+        Trace(Config config, List<FleetCar> fleet, List<Op> ops) {
+            this.config = config;
+            this.fleet = fleet;
+            this.ops = ops;
+        }
+    }
+
+    // Distinct categories of the fleet in order of first appearance; fills in each slot's index
+    static List<CarCategory> categorize(List<FleetCar> fleet, int[] categoryOf) {
+        Map<CarCategory, Integer> indexes = new HashMap<>();
+        List<CarCategory> categories = new ArrayList<>();
+        for (int i = 0; i < fleet.size(); i++) {
+            FleetCar car = fleet.get(i);
+            CarCategory category = new CarCategory(car.make, car.model, car.year);
+            Integer index = indexes.get(category);
+            if (index == null) {
+                index = categories.size();
+                indexes.put(category, index);
+                categories.add(category);
+            }
+            categoryOf[i] = index;
+        }
+        return categories;
+    }
+
+    // Generation
+
+    public static Trace generate(Config config) {
+        Random fleetRandom = new Random(config.seed);
+        List<FleetCar> unpooled = new ArrayList<>(config.fleetSize);
+        for (int i = 0; i < config.fleetSize; i++) {
+            String[] makeModel = CATALOG[fleetRandom.nextInt(CATALOG.length)];
+            int year = FIRST_MODEL_YEAR + fleetRandom.nextInt(MODEL_YEARS);
+            unpooled.add(new FleetCar(makeModel[0], makeModel[1], year, 30 + fleetRandom.nextInt(18) * 5, false));
+        }
+        // Every other category is pooled
+        int[] categoryOf = new int[config.fleetSize];
+        categorize(unpooled, categoryOf);
+        List<FleetCar> fleet = new ArrayList<>(config.fleetSize);
+        for (int i = 0; i < config.fleetSize; i++) {
+            FleetCar car = unpooled.get(i);
+            fleet.add(new FleetCar(car.make, car.model, car.year, car.dailyRate, categoryOf[i] % 2 == 0));
+        }
+
+        Random random = new Random(config.seed);
+        List<Op> ops = new ArrayList<>(config.operations);
+
+        // Model of the fleet so every generated request is valid when replayed in order.
+        // A pooled rental holds a free pooled slot of its category only for counting; the
+        // service decides which car of the category it actually gets.
+        int[] freeById = new int[config.fleetSize];
+        int[] freePooled = new int[config.fleetSize];
+        int freeByIdCount = 0;
+        int freePooledCount = 0;
+        for (int i = 0; i < config.fleetSize; i++) {
+            if (fleet.get(i).pooled) freePooled[freePooledCount++] = i;
+            else freeById[freeByIdCount++] = i;
+        }
+        int[] activeSlot = new int[config.fleetSize];
+        int[] activeHandle = new int[config.fleetSize];
+        int[] activeDue = new int[config.fleetSize];
+        int activeCount = 0;
+        int[] pooledReturns = new int[config.fleetSize];
+        int nextHandle = 0;
+        int nextCustomer = config.customerCount;
+        int totalWeight = Arrays.stream(config.mix).sum();
+        double clockSeconds = 0;
+
+        for (int i = 0; i < config.operations; i++) {
+            clockSeconds += -Math.log(1 - random.nextDouble()) / config.arrivalsPerSecond;
+            long arrivalMicros = (long) (clockSeconds * 1_000_000);
+            int today = (int) (clockSeconds / config.secondsPerDay);
+
+            byte type = pickType(config.mix, totalWeight, random);
+            if (type == RENT && freeByIdCount == 0) {
+                type = RENT_ANY;
+            } else if (type == RENT_ANY && freePooledCount == 0) {
+                type = RENT;
+            }
+            if ((type == RENT && freeByIdCount == 0) || (type == RENT_ANY && freePooledCount == 0)) {
+                type = RETURN;
+            } else if ((type == RETURN || type == LATE_RETURN) && activeCount == 0) {
+                type = freeByIdCount > 0 ? RENT : RENT_ANY;
+            }
+
+            switch (type) {
+                case RENT: {
+                    int pick = random.nextInt(freeByIdCount);
+                    int car = freeById[pick];
+                    freeById[pick] = freeById[--freeByIdCount];
+                    int days = 1 + random.nextInt(7);
+                    activeSlot[activeCount] = car;
+                    activeHandle[activeCount] = -1;
+                    activeDue[activeCount++] = today + days;
+                    ops.add(new Op(RENT, arrivalMicros, today, car, random.nextInt(nextCustomer), days));
+                    break;
+                }
+                case RENT_ANY: {
+                    int pick = random.nextInt(freePooledCount);
+                    int car = freePooled[pick];
+                    freePooled[pick] = freePooled[--freePooledCount];
+                    int category = categoryOf[car];
+                    int days = 1 + random.nextInt(7);
+                    activeSlot[activeCount] = car;
+                    activeHandle[activeCount] = nextHandle;
+                    activeDue[activeCount++] = today + days;
+                    ops.add(new Op(RENT_ANY, arrivalMicros, today, category, random.nextInt(nextCustomer), days,
+                            nextHandle++, pooledReturns[category]));
+                    break;
+                }
+                case RETURN:
+                case LATE_RETURN: {
+                    // Every return is dated today; only rentals already past their due day
+                    // can come back late, so fall back to the other kind when none qualify
+                    int slot = pickRental(activeDue, activeCount, today, type == LATE_RETURN, random);
+                    if (slot < 0) {
+                        type = type == RETURN ? LATE_RETURN : RETURN;
+                        slot = pickRental(activeDue, activeCount, today, type == LATE_RETURN, random);
+                    }
+                    int car = activeSlot[slot];
+                    int handle = activeHandle[slot];
+                    activeCount--;
+                    activeSlot[slot] = activeSlot[activeCount];
+                    activeHandle[slot] = activeHandle[activeCount];
+                    activeDue[slot] = activeDue[activeCount];
+                    if (handle < 0) {
+                        freeById[freeByIdCount++] = car;
+                        ops.add(new Op(type, arrivalMicros, today, car, 0, 0));
+                    } else {
+                        int category = categoryOf[car];
+                        freePooled[freePooledCount++] = car;
+                        pooledReturns[category]++;
+                        ops.add(new Op(type, arrivalMicros, today, category, 0, 0, handle, 0));
+                    }
+                    break;
+                }
+                case NEW_CUSTOMER:
+                    ops.add(new Op(NEW_CUSTOMER, arrivalMicros, today, 0, nextCustomer++, 0));
+                    break;
+                default:
+                    ops.add(new Op(LIST, arrivalMicros, today, 0, 0, 0));
+            }
+        }
+        return new Trace(config, fleet, ops);
+    }
+
+    // Picks a random active rental that is overdue (or not, per the flag) and returns its
+    // position in the active arrays, or -1 if there is none. Samples first and scans as a fallback.
+    private static int pickRental(int[] dueDay, int activeCount, int today, boolean overdue, Random random) {
+        for (int attempt = 0; attempt < 16; attempt++) {
+            int slot = random.nextInt(activeCount);
+            if ((dueDay[slot] < today) == overdue) return slot;
+        }
+        int chosen = -1;
+        int matches = 0;
+        for (int slot = 0; slot < activeCount; slot++) {
+            if ((dueDay[slot] < today) == overdue && random.nextInt(++matches) == 0) {
+                chosen = slot;
+            }
+        }
+        return chosen;
+    }
+
+    private static byte pickType(int[] mix, int totalWeight, Random random) {
+        int roll = random.nextInt(totalWeight);
+        for (byte type = 0; type < mix.length; type++) {
+            roll -= mix[type];
+            if (roll < 0) return type;
+        }
+        return LIST;
+    }
+
+    // Trace Files
+
+    public static void writeTrace(Trace trace, String path) throws IOException {
+        Config config = trace.config;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(path))))) {
+            out.writeInt(TRACE_MAGIC);
+            out.writeInt(TRACE_VERSION);
+            out.writeLong(config.seed);
+            out.writeInt(trace.fleet.size());
+            for (FleetCar car : trace.fleet) {
+                out.writeUTF(car.make);
+                out.writeUTF(car.model);
+                out.writeInt(car.year);
+                out.writeDouble(car.dailyRate);
+                out.writeBoolean(car.pooled);
+            }
+            out.writeInt(config.customerCount);
+            out.writeLong(config.startDate.toEpochDay());
+            out.writeInt(trace.ops.size());
+            long previousMicros = 0;
+            for (Op op : trace.ops) {
+                out.writeByte(op.type);
+                writeVarLong(out, op.arrivalMicros - previousMicros);
+                out.writeInt(op.day);
+                out.writeInt(op.car);
+                out.writeInt(op.customer);
+                out.writeByte(op.rentalDays);
+                out.writeInt(op.handle);
+                writeVarLong(out, op.after);
+                previousMicros = op.arrivalMicros;
+            }
+        }
+    }
+
+    public static Trace readTrace(String path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(path))))) {
+            if (in.readInt() != TRACE_MAGIC) {
+                throw new IOException(path + " is not a workload trace");
+            }
+            int version = in.readInt();
+            if (version != TRACE_VERSION) {
+                throw new IOException("Unsupported trace version " + version);
+            }
+            Config config = new Config();
+            config.seed = in.readLong();
+            config.fleetSize = in.readInt();
+            if (config.fleetSize <= 0) {
+                throw new IOException("Malformed trace header");
+            }
+            List<FleetCar> fleet = new ArrayList<>(config.fleetSize);
+            for (int i = 0; i < config.fleetSize; i++) {
+                FleetCar car = new FleetCar(in.readUTF(), in.readUTF(), in.readInt(), in.readDouble(), in.readBoolean());
+                if (!(car.dailyRate > 0) || Double.isInfinite(car.dailyRate)) {
+                    throw new IOException("Malformed trace: fleet car " + i + " has daily rate " + car.dailyRate);
+                }
+                fleet.add(car);
+            }
+            config.customerCount = in.readInt();
+            config.startDate = LocalDate.ofEpochDay(in.readLong());
+            config.operations = in.readInt();
+            if (config.customerCount <= 0 || config.operations < 0) {
+                throw new IOException("Malformed trace header");
+            }
+            List<Op> ops = new ArrayList<>(config.operations);
+            long arrivalMicros = 0;
+            for (int i = 0; i < config.operations; i++) {
+                byte type = in.readByte();
+                long gap = readVarLong(in);
+                if (gap < 0) {
+                    throw new IOException("Malformed trace: negative arrival gap at op " + i);
+                }
+                arrivalMicros += gap;
+                int day = in.readInt();
+                int car = in.readInt();
+                int customer = in.readInt();
+                int rentalDays = in.readByte();
+                int handle = in.readInt();
+                long after = readVarLong(in);
+                if (after < 0 || after > Integer.MAX_VALUE) {
+                    throw new IOException("Malformed trace: dependency count out of range at op " + i);
+                }
+                ops.add(new Op(type, arrivalMicros, day, car, customer, rentalDays, handle, (int) after));
+            }
+            Trace trace = new Trace(config, fleet, ops);
+            validate(trace);
+            return trace;
+        }
+    }
+
+    // Replays trust every index in a trace and wait on earlier ops, so a file must describe
+    // a fleet state the generator could have produced: rent only free cars, return only
+    // rented ones, and rent only to customers already registered. A rent-any must find a
+    // free pooled car once the returns it waits for are done, and may only wait for
+    // returns that come before it.
+    private static void validate(Trace trace) throws IOException {
+        Config config = trace.config;
+        int[] categoryOf = new int[config.fleetSize];
+        List<CarCategory> categories = categorize(trace.fleet, categoryOf);
+        int[] poolSize = new int[categories.size()];
+        for (int i = 0; i < config.fleetSize; i++) {
+            if (trace.fleet.get(i).pooled) poolSize[categoryOf[i]]++;
+        }
+        for (int i = 0; i < config.fleetSize; i++) {
+            boolean pooledCategory = poolSize[categoryOf[i]] > 0;
+            if (trace.fleet.get(i).pooled != pooledCategory) {
+                throw new IOException("Malformed trace: " + categories.get(categoryOf[i]) + " is only partly pooled");
+            }
+        }
+        long handles = trace.ops.stream().filter(op -> op.type == RENT_ANY).count();
+        int[] handleCategory = new int[(int) handles];
+        boolean[] handleReturned = new boolean[(int) handles];
+        int[] pooledOut = new int[categories.size()];
+        int[] pooledReturned = new int[categories.size()];
+        boolean[] rented = new boolean[config.fleetSize];
+        int nextCustomer = config.customerCount;
+        int nextHandle = 0;
+
+        for (int i = 0; i < trace.ops.size(); i++) {
+            Op op = trace.ops.get(i);
+            boolean byId = op.type == RENT || (op.isReturn() && op.handle < 0);
+            String problem = null;
+            if (op.type < 0 || op.type >= OP_NAMES.length) {
+                problem = "unknown op type " + op.type;
+            } else if (op.day < 0) {
+                problem = "negative day " + op.day;
+            } else if (byId && (op.car < 0 || op.car >= config.fleetSize)) {
+                problem = "car index " + op.car + " outside the fleet";
+            } else if (byId && trace.fleet.get(op.car).pooled) {
+                problem = "car " + op.car + " is pooled and only rented by category";
+            } else if ((op.type == RENT || op.type == RENT_ANY)
+                    && (op.customer < 0 || op.customer >= nextCustomer)) {
+                problem = "unknown customer " + op.customer;
+            } else if ((op.type == RENT || op.type == RENT_ANY) && op.rentalDays <= 0) {
+                problem = "rental of " + op.rentalDays + " days";
+            } else if (op.type == RENT) {
+                if (rented[op.car]) problem = "car " + op.car + " rented while already out";
+                else rented[op.car] = true;
+            } else if (op.type == RENT_ANY) {
+                if (op.car < 0 || op.car >= categories.size() || poolSize[op.car] == 0) {
+                    problem = "category " + op.car + " is not pooled";
+                } else if (op.handle != nextHandle) {
+                    problem = "pooled rental " + op.handle + " out of sequence";
+                } else if (op.after > pooledReturned[op.car]) {
+                    problem = "waits for returns that come later";
+                } else if (poolSize[op.car] - pooledOut[op.car] + op.after < 1) {
+                    problem = "no pooled " + categories.get(op.car) + " would be free";
+                } else {
+                    pooledOut[op.car]++;
+                    handleCategory[nextHandle++] = op.car;
+                }
+            } else if (op.isReturn() && op.handle < 0) {
+                if (!rented[op.car]) problem = "car " + op.car + " returned while not rented";
+                else rented[op.car] = false;
+            } else if (op.isReturn()) {
+                if (op.handle >= nextHandle || handleReturned[op.handle]) {
+                    problem = "pooled rental " + op.handle + " returned while not rented";
+                } else if (op.car != handleCategory[op.handle]) {
+                    problem = "pooled rental " + op.handle + " returned to the wrong category";
+                } else {
+                    handleReturned[op.handle] = true;
+                    pooledReturned[op.car]++;
+                }
+            } else if (op.type == NEW_CUSTOMER) {
+                if (op.customer != nextCustomer) problem = "new customer " + op.customer + " out of sequence";
+                else nextCustomer++;
+            }
+            if (problem != null) {
+                throw new IOException("Malformed trace at op " + i + ": " + problem);
+            }
+        }
+    }
+
+    // Arrival gaps are usually a few hundred microseconds but can be arbitrarily long
+    // at low arrival rates, so they are stored as unsigned LEB128 varints.
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint in trace");
+    }
+
+    // Replay
+
+    public static class Report {
+        int threads;
+        boolean realTime;
+        long wallNanos;
+        long[] latencies;       // Sorted, one entry per operation
+        long[] opCounts = new long[OP_NAMES.length];
+        long failures;
+        List<String> checkFailures = new ArrayList<>();
+
+        public boolean passed() {
+            return failures == 0 && checkFailures.isEmpty();
+        }
+
+        long percentile(double p) {
+            if (latencies.length == 0) return 0;
+            int index = (int) Math.ceil(p * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(index, latencies.length - 1))];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            double seconds = wallNanos / 1e9;
+            sb.append("--- Workload Replay Report ---\n");
+            sb.append("Threads: ").append(threads).append(", Speed: ").append(realTime ? "1x" : "max").append('\n');
+            sb.append("Operations: ").append(latencies.length);
+            for (int i = 0; i < OP_NAMES.length; i++) {
+                sb.append(i == 0 ? " (" : ", ").append(OP_NAMES[i]).append(": ").append(opCounts[i]);
+            }
+            sb.append(")\n");
+            sb.append(String.format("Elapsed: %.3f s, Throughput: %.0f ops/s%n", seconds, latencies.length / seconds));
+            sb.append(String.format("Latency (us): p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                    percentile(0.50) / 1e3, percentile(0.90) / 1e3, percentile(0.99) / 1e3,
+                    percentile(0.999) / 1e3, percentile(1.0) / 1e3));
+            sb.append("Failed operations: ").append(failures).append('\n');
+            if (checkFailures.isEmpty()) {
+                sb.append("Final-state checks: passed");
+            } else {
+                sb.append("Final-state checks: FAILED");
+                checkFailures.forEach(failure -> sb.append("\n  ").append(failure));
+            }
+            return sb.toString();
+        }
+    }
+
+    // State shared by the replay workers
+    private static class ReplayState {
+        final RentalService service;
+        final LocalDate startDate;
+        final int[] carIds;
+        final List<CarCategory> categories;
+        final AtomicIntegerArray customerIds;              // 0 until the customer is registered
+        final Rental[] activeRentalByCar;                  // Each slot is only touched by its car's thread
+        final AtomicReferenceArray<Optional<Rental>> pooledRentals; // null until the rent-any has run
+        final AtomicIntegerArray pooledReturnsDone;        // Per category
+
+        ReplayState(RentalService service, LocalDate startDate, int[] carIds, List<CarCategory> categories,
+                    AtomicIntegerArray customerIds, int handles) {
+            this.service = service;
+            this.startDate = startDate;
+            this.carIds = carIds;
+            this.categories = categories;
+            this.customerIds = customerIds;
+            this.activeRentalByCar = new Rental[carIds.length];
+            this.pooledRentals = new AtomicReferenceArray<>(handles);
+            this.pooledReturnsDone = new AtomicIntegerArray(categories.size());
+        }
+    }
+
+    /**
+     * Replays a trace against a fresh {@link RentalService}. Operations on a car rented by
+     * ID are always handled by the same thread so they stay in trace order. Rent-any
+     * requests, listings and new customers are spread round-robin, so rent-any requests
+     * for the same category compete for its cars from different threads.
+     */
+    public static Report replay(Trace trace, int threads, boolean realTime) throws InterruptedException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        Config config = trace.config;
+        RentalService service = new RentalService();
+        int baseCustomers = service.getAllCustomers().size();
+        int baseCars = service.getAllCars().size();
+
+        int[] categoryOf = new int[config.fleetSize];
+        List<CarCategory> categories = categorize(trace.fleet, categoryOf);
+        for (int i = 0; i < config.fleetSize; i++) {
+            CarCategory category = categories.get(categoryOf[i]);
+            if (trace.fleet.get(i).pooled
+                    && service.getAvailableCars().stream().anyMatch(car -> CarCategory.of(car).equals(category))) {
+                throw new IllegalArgumentException("Trace pools " + category + ", which the service already stocks");
+            }
+        }
+        int[] carIds = new int[config.fleetSize];
+        Map<Integer, Integer> slotByCarId = new HashMap<>();
+        for (int i = 0; i < config.fleetSize; i++) {
+            FleetCar slot = trace.fleet.get(i);
+            Car car = new Car(slot.make, slot.model, slot.year, "SIM" + i, slot.dailyRate);
+            service.addCar(car);
+            carIds[i] = car.getId();
+            slotByCarId.put(car.getId(), i);
+        }
+        int totalCustomers = config.customerCount;
+        int handles = 0;
+        for (Op op : trace.ops) {
+            if (op.type == NEW_CUSTOMER) totalCustomers = Math.max(totalCustomers, op.customer + 1);
+            if (op.type == RENT_ANY) handles = Math.max(handles, op.handle + 1);
+        }
+        AtomicIntegerArray customerIds = new AtomicIntegerArray(totalCustomers);
+        for (int i = 0; i < config.customerCount; i++) {
+            Customer customer = new Customer("Customer " + i, "customer" + i + "@example.com");
+            service.addCustomer(customer);
+            customerIds.set(i, customer.getId());
+        }
+        ReplayState state = new ReplayState(service, config.startDate, carIds, categories, customerIds, handles);
+
+        List<List<Op>> partitions = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            partitions.add(new ArrayList<>());
+        }
+        for (int i = 0; i < trace.ops.size(); i++) {
+            Op op = trace.ops.get(i);
+            int key;
+            if (op.type == RENT || (op.isReturn() && op.handle < 0)) key = op.car;
+            else if (op.isReturn()) key = op.handle;
+            else key = i;
+            partitions.get(key % threads).add(op);
+        }
+
+        long[][] latencies = new long[threads][];
+        long[][] opCounts = new long[threads][OP_NAMES.length];
+        long[] failures = new long[threads];
+        Throwable[] errors = new Throwable[threads];
+        AtomicBoolean aborted = new AtomicBoolean();
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        long[] startNanos = new long[1];
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            final int worker = t;
+            workers[t] = new Thread(() -> {
+                List<Op> ops = partitions.get(worker);
+                long[] timings = new long[ops.size()];
+                ready.countDown();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                int done = 0;
+                try {
+                    // Once any worker fails, the others stop: they may be waiting on its ops
+                    while (done < ops.size() && !aborted.get()) {
+                        Op op = ops.get(done);
+                        long scheduled = startNanos[0] + op.arrivalMicros * 1_000;
+                        if (realTime) {
+                            long wait;
+                            while ((wait = scheduled - System.nanoTime()) > 0 && !aborted.get()) {
+                                LockSupport.parkNanos(wait);
+                            }
+                        }
+                        while (!dependenciesMet(state, op) && !aborted.get()) {
+                            Thread.yield();
+                        }
+                        if (aborted.get()) break;
+                        // At 1x, latency is measured from the scheduled arrival so queueing delay counts
+                        long began = realTime ? scheduled : System.nanoTime();
+                        boolean ok = execute(state, op, began, timings, done);
+                        opCounts[worker][op.type]++;
+                        if (!ok) failures[worker]++;
+                        done++;
+                    }
+                } catch (Throwable e) {
+                    errors[worker] = e;
+                    aborted.set(true);
+                } finally {
+                    latencies[worker] = Arrays.copyOf(timings, done);
+                }
+            }, "workload-" + t);
+            workers[t].start();
+        }
+
+        // RentalService reports every call on stdout; keep that out of the measurements
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        long elapsed;
+        try {
+            ready.await();
+            startNanos[0] = System.nanoTime();
+            start.countDown();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            elapsed = System.nanoTime() - startNanos[0];
+        } finally {
+            System.setOut(stdout);
+        }
+
+        Report report = new Report();
+        report.threads = threads;
+        report.realTime = realTime;
+        report.wallNanos = elapsed;
+        report.latencies = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        for (int t = 0; t < threads; t++) {
+            for (int type = 0; type < OP_NAMES.length; type++) {
+                report.opCounts[type] += opCounts[t][type];
+            }
+            report.failures += failures[t];
+            if (errors[t] != null) {
+                report.checkFailures.add("Worker " + t + " aborted the run: " + errors[t]);
+            }
+        }
+        if (aborted.get()) {
+            return report; // The final state of a partial replay says nothing
+        }
+
+        // Which fleet slot each rent-any was given, checked against the category it asked for
+        int[] pooledSlots = new int[handles];
+        Arrays.fill(pooledSlots, -1);
+        for (Op op : trace.ops) {
+            if (op.type != RENT_ANY) continue;
+            Optional<Rental> rental = state.pooledRentals.get(op.handle);
+            if (rental == null || !rental.isPresent()) continue;
+            Integer slot = slotByCarId.get(rental.get().getCar().getId());
+            if (slot == null || categoryOf[slot] != op.car || !trace.fleet.get(slot).pooled) {
+                report.checkFailures.add("Rent-any for " + categories.get(op.car) + " was given car "
+                        + rental.get().getCar().getId());
+            } else {
+                pooledSlots[op.handle] = slot;
+            }
+        }
+        checkFinalState(service, report, expectedRevenue(trace, pooledSlots), baseCars + config.fleetSize,
+                baseCustomers + config.customerCount + report.opCounts[NEW_CUSTOMER]);
+        return report;
+    }
+
+    // Every dependency points at an op earlier in the trace, so the earliest op still
+    // pending can always run and the waits cannot deadlock.
+    private static boolean dependenciesMet(ReplayState state, Op op) {
+        switch (op.type) {
+            case RENT:
+                // The customer may be registered by another thread that has not got there yet
+                return state.customerIds.get(op.customer) != 0;
+            case RENT_ANY:
+                // Without the returns the generator counted on, the category could be empty
+                return state.customerIds.get(op.customer) != 0
+                        && state.pooledReturnsDone.get(op.car) >= op.after;
+            case RETURN:
+            case LATE_RETURN:
+                return op.handle < 0 || state.pooledRentals.get(op.handle) != null;
+            default:
+                return true;
+        }
+    }
+
+    // Runs one op and reports whether it succeeded. The latency of the service call is
+    // stored in timings[slot]; bookkeeping the harness does afterwards is not measured.
+    private static boolean execute(ReplayState state, Op op, long began, long[] timings, int slot) {
+        RentalService service = state.service;
+        LocalDate day = state.startDate.plusDays(op.day);
+        switch (op.type) {
+            case RENT: {
+                Optional<Rental> rental = service.rentSpecificCar(state.carIds[op.car],
+                        state.customerIds.get(op.customer), day, day.plusDays(op.rentalDays));
+                timings[slot] = System.nanoTime() - began;
+                if (!rental.isPresent()) return false;
+                state.activeRentalByCar[op.car] = rental.get();
+                return true;
+            }
+            case RENT_ANY: {
+                Optional<Rental> rental = service.rentAnyCar(state.categories.get(op.car),
+                        state.customerIds.get(op.customer), day, day.plusDays(op.rentalDays));
+                timings[slot] = System.nanoTime() - began;
+                state.pooledRentals.set(op.handle, rental);
+                return rental.isPresent();
+            }
+            case RETURN:
+            case LATE_RETURN: {
+                if (op.handle >= 0) {
+                    Optional<Rental> rental = state.pooledRentals.get(op.handle);
+                    boolean ok = rental.isPresent() && service.returnCar(rental.get().getId(), day);
+                    timings[slot] = System.nanoTime() - began;
+                    // Counted even on failure so waiting rent-any requests never hang; the
+                    // failure itself is already reported
+                    state.pooledReturnsDone.incrementAndGet(op.car);
+                    return ok;
+                }
+                Rental rental = state.activeRentalByCar[op.car];
+                boolean ok = rental != null && service.returnCar(rental.getId(), day);
+                timings[slot] = System.nanoTime() - began;
+                if (ok) state.activeRentalByCar[op.car] = null;
+                return ok;
+            }
+            case NEW_CUSTOMER: {
+                Customer customer = new Customer("Customer " + op.customer, "customer" + op.customer + "@example.com");
+                service.addCustomer(customer);
+                timings[slot] = System.nanoTime() - began;
+                state.customerIds.set(op.customer, customer.getId());
+                return true;
+            }
+            case LIST:
+                service.getAvailableCars();
+                timings[slot] = System.nanoTime() - began;
+                return true;
+            default:
+                throw new IllegalStateException("Unknown op type " + op.type);
+        }
+    }
+
+    // Prices every rental in the trace from the recorded fleet rates, independently of
+    // Rental: whole days with a one-day minimum, plus half the rate per overdue day.
+    // Rent-any rentals are priced at the rate of the slot they were given (-1 if none).
+    static double expectedRevenue(Trace trace, int[] pooledSlots) {
+        int[] rentalDay = new int[trace.fleet.size()];
+        int[] dueDay = new int[trace.fleet.size()];
+        int[] pooledRentalDay = new int[pooledSlots.length];
+        int[] pooledDueDay = new int[pooledSlots.length];
+        double revenue = 0;
+        for (Op op : trace.ops) {
+            if (op.type == RENT) {
+                rentalDay[op.car] = op.day;
+                dueDay[op.car] = op.day + op.rentalDays;
+            } else if (op.type == RENT_ANY) {
+                pooledRentalDay[op.handle] = op.day;
+                pooledDueDay[op.handle] = op.day + op.rentalDays;
+            } else if (op.isReturn()) {
+                int slot = op.handle < 0 ? op.car : pooledSlots[op.handle];
+                if (slot < 0) continue;
+                int rented = op.handle < 0 ? rentalDay[op.car] : pooledRentalDay[op.handle];
+                int due = op.handle < 0 ? dueDay[op.car] : pooledDueDay[op.handle];
+                double rate = trace.fleet.get(slot).dailyRate;
+                revenue += Math.max(1, op.day - rented) * rate;
+                revenue += Math.max(0, op.day - due) * rate * 0.5;
+            }
+        }
+        return revenue;
+    }
+
+    private static void checkFinalState(RentalService service, Report report, double expectedRevenue,
+                                        long expectedCars, long expectedCustomers) {
+        List<Rental> history = service.getRentalHistory();
+        List<Rental> active = service.getActiveRentals();
+        double historyRevenue = history.stream().mapToDouble(Rental::getTotalCost).sum();
+        long rents = report.opCounts[RENT] + report.opCounts[RENT_ANY];
+        long returns = report.opCounts[RETURN] + report.opCounts[LATE_RETURN];
+
+        if (Math.abs(historyRevenue - expectedRevenue) > 0.01) {
+            report.checkFailures.add(String.format("Revenue mismatch: history $%.2f, expected from trace $%.2f",
+                    historyRevenue, expectedRevenue));
+        }
+        if (history.size() != returns) {
+            report.checkFailures.add("Returned rentals: expected " + returns + ", found " + history.size());
+        }
+        if (active.size() != rents - returns) {
+            report.checkFailures.add("Active rentals: expected " + (rents - returns) + ", found " + active.size());
+        }
+        if (service.getAvailableCars().size() + active.size() != expectedCars) {
+            report.checkFailures.add("Available plus rented cars do not add up to the fleet size " + expectedCars);
+        }
+        if (active.stream().map(rental -> rental.getCar().getId()).distinct().count() != active.size()) {
+            report.checkFailures.add("A car is rented out more than once");
+        }
+        if (service.getAllCustomers().size() != expectedCustomers) {
+            report.checkFailures.add("Customers: expected " + expectedCustomers + ", found " + service.getAllCustomers().size());
+        }
+    }
+
+    // Command Line
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.out.println("Usage: WorkloadSimulator generate <trace> [options] | replay <trace> [threads=N] [speed=1x|max] | run [options]");
+            return;
+        }
+        String command = args[0];
+        boolean hasPath = command.equals("generate") || command.equals("replay");
+        if (hasPath && args.length < 2) {
+            System.out.println("Error: " + command + " needs a trace file path.");
+            return;
+        }
+        Map<String, String> options = parseOptions(args, hasPath ? 2 : 1);
+        int threads = Integer.parseInt(options.getOrDefault("threads", "4"));
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        String speed = options.getOrDefault("speed", "max");
+        if (!speed.equals("1x") && !speed.equals("max")) {
+            throw new IllegalArgumentException("speed must be 1x or max");
+        }
+        boolean realTime = speed.equals("1x");
+
+        switch (command) {
+            case "generate": {
+                Trace trace = generate(Config.parse(options));
+                writeTrace(trace, args[1]);
+                System.out.println("Wrote " + trace.ops.size() + " operations to " + args[1]);
+                break;
+            }
+            case "replay":
+                printAndExit(replay(readTrace(args[1]), threads, realTime));
+                break;
+            case "run":
+                printAndExit(replay(generate(Config.parse(options)), threads, realTime));
+                break;
+            default:
+                System.out.println("Error: Unknown command '" + command + "'.");
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args, int from) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = from; i < args.length; i++) {
+            int eq = args[i].indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected key=value but got '" + args[i] + "'");
+            }
+            options.put(args[i].substring(0, eq), args[i].substring(eq + 1));
+        }
+        return options;
+    }
+
+    private static void printAndExit(Report report) {
+        System.out.println(report);
+        if (!report.passed()) {
+            System.exit(1);
+        }
+    }
+}
@@ -12,7 +12,7 @@ public class Car {
     private int year;
     private String licensePlate;
     private double dailyRate;
-    private boolean isAvailable;
+    private volatile boolean isAvailable;
 
     public Car(String make, String model, int year, String licensePlate, double dailyRate) {
         this.id = idGenerator.incrementAndGet();
@@ -58,7 +58,8 @@ public class Car {
         this.dailyRate = dailyRate;
     }
 
-    public void setAvailable(boolean available) {
+    // Package-private: only RentalService changes availability, keeping it in step with its index
+    void setAvailable(boolean available) {
         isAvailable = available;
     }
 